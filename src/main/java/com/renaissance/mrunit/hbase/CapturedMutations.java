@@ -0,0 +1,269 @@
+/*
+ * Software License Agreement for MRUnit HBase Extension
+ * 
+ * Copyright (c) 2014 Renaissance Learning, Inc. and James Argeropoulos
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.renaissance.mrunit.hbase;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+
+/*
+ * An append-only arena holding the emitted mutations in serialized form, used by the drivers' withOffHeapCapture() mode.
+ * Each mutation is written to one chunk as:
+ * 	keyLength key cellCount (familyLength family qualifierLength qualifier valueLength value)*
+ * Chunks are direct ByteBuffers, so the serialized cells sit outside the Java heap.
+ */
+public class CapturedMutations extends EmittedMutations {
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	private static final int INT_SIZE = 4;
+	private final int chunkSize;
+	private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+	private ByteBuffer current;
+	private long[] offsets = new long[16];
+
+	public CapturedMutations(){
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	public CapturedMutations(int chunkSize){
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("Chunk size must be positive; got " + chunkSize);
+		this.chunkSize = chunkSize;
+	}
+
+	public void append(byte[] key, Writable mutation){
+		if (mutation instanceof Put)
+			append(key, (Put)mutation);
+		else if (mutation instanceof KeyValue)
+			append(key, (KeyValue)mutation);
+		else
+			throw unsupported(mutation);
+	}
+
+	private void append(byte[] key, Put mutation){
+		int length = INT_SIZE + key.length + INT_SIZE;
+		int cellCount = 0;
+		for(List<KeyValue> columnList : mutation.getFamilyMap().values())
+			for(KeyValue column : columnList){
+				length += cellLength(column);
+				cellCount++;
+			}
+		ByteBuffer chunk = reserve(key, length);
+		chunk.putInt(key.length).put(key).putInt(cellCount);
+		for(List<KeyValue> columnList : mutation.getFamilyMap().values())
+			for(KeyValue column : columnList)
+				putCell(chunk, column);
+	}
+
+	private void append(byte[] key, KeyValue mutation){
+		ByteBuffer chunk = reserve(key, INT_SIZE + key.length + INT_SIZE + cellLength(mutation));
+		chunk.putInt(key.length).put(key).putInt(1);
+		putCell(chunk, mutation);
+	}
+
+	private int cellLength(KeyValue column){
+		return INT_SIZE + column.getFamilyLength()
+			+ INT_SIZE + column.getQualifierLength()
+			+ INT_SIZE + column.getValueLength();
+	}
+
+	private void putCell(ByteBuffer chunk, KeyValue column){
+		byte[] buffer = column.getBuffer();
+		chunk.putInt(column.getFamilyLength()).put(buffer, column.getFamilyOffset(), column.getFamilyLength());
+		chunk.putInt(column.getQualifierLength()).put(buffer, column.getQualifierOffset(), column.getQualifierLength());
+		chunk.putInt(column.getValueLength()).put(buffer, column.getValueOffset(), column.getValueLength());
+	}
+
+	/*
+	 * Records never straddle chunks; a record bigger than the chunk size gets a chunk of its own.
+	 */
+	private ByteBuffer reserve(byte[] key, int length){
+		if (null == current || current.remaining() < length){
+			int capacity = Math.max(chunkSize, length);
+			current = ByteBuffer.allocateDirect(capacity);
+			chunks.add(current);
+		}
+		int ordinal = size();
+		if (ordinal == offsets.length){
+			long[] grownOffsets = new long[ordinal * 2];
+			System.arraycopy(offsets, 0, grownOffsets, 0, ordinal);
+			offsets = grownOffsets;
+		}
+		offsets[ordinal] = ((long)(chunks.size() - 1) << 32) | current.position();
+		indexKey(key);
+		return current;
+	}
+
+	/*
+	 * Drops the chunks. Direct buffers go back to the OS once the collector reclaims the (small) ByteBuffer objects.
+	 */
+	public void clear(){
+		super.clear();
+		chunks.clear();
+		current = null;
+	}
+
+	protected boolean keyEquals(int ordinal, byte[] key){
+		ByteBuffer chunk = chunkOf(ordinal);
+		int position = positionOf(ordinal);
+		return chunk.getInt(position) == key.length && regionEquals(chunk, position + INT_SIZE, key, 0, key.length);
+	}
+
+	private ByteBuffer chunkOf(int ordinal){
+		checkOrdinal(ordinal);
+		return chunks.get((int)(offsets[ordinal] >>> 32));
+	}
+
+	private int positionOf(int ordinal){
+		return (int)offsets[ordinal];
+	}
+
+	private static boolean regionEquals(ByteBuffer chunk, int position, byte[] other, int offset, int length){
+		for(int i = 0; i < length; i++)
+			if (chunk.get(position + i) != other[offset + i])
+				return false;
+		return true;
+	}
+
+	private static String regionToString(ByteBuffer chunk, int position, int length){
+		byte[] bytes = new byte[length];
+		for(int i = 0; i < length; i++)
+			bytes[i] = chunk.get(position + i);
+		return Bytes.toString(bytes);
+	}
+
+	public Mutation view(){
+		return new Mutation();
+	}
+
+	/*
+	 * A flyweight over one captured record; the lookups read straight from the chunk using absolute gets.
+	 */
+	public class Mutation implements View{
+		private int ordinal;
+		private ByteBuffer chunk;
+		private int position;
+		private int cellsPosition;
+		private int cellPosition;
+		private int cellsLeft;
+
+		public Mutation moveTo(int ordinal){
+			chunk = chunkOf(ordinal);
+			this.ordinal = ordinal;
+			position = positionOf(ordinal);
+			cellsPosition = position + INT_SIZE + getKeyLength() + INT_SIZE;
+			rewindCells();
+			return this;
+		}
+
+		public boolean keyEquals(byte[] key){
+			return CapturedMutations.this.keyEquals(ordinal, key);
+		}
+
+		public boolean keyIsSuffixOf(byte[] key){
+			int keyLength = getKeyLength();
+			return keyLength <= key.length && regionEquals(chunk, position + INT_SIZE, key, key.length - keyLength, keyLength);
+		}
+
+		public String getKey(){
+			return regionToString(chunk, position + INT_SIZE, getKeyLength());
+		}
+
+		private int getKeyLength(){
+			return chunk.getInt(position);
+		}
+
+		public int getCellCount(){
+			return chunk.getInt(cellsPosition - INT_SIZE);
+		}
+
+		public boolean has(byte[] family, byte[] qualifier){
+			return NO_RECORD != findValue(family, qualifier);
+		}
+
+		public boolean valueEquals(byte[] family, byte[] qualifier, byte[] expected){
+			int valuePosition = findValue(family, qualifier);
+			return NO_RECORD != valuePosition && fieldEquals(valuePosition, expected);
+		}
+
+		public String getValue(byte[] family, byte[] qualifier){
+			int valuePosition = findValue(family, qualifier);
+			if (NO_RECORD == valuePosition)
+				return null;
+			return fieldToString(valuePosition);
+		}
+
+		public void rewindCells(){
+			cellPosition = NO_RECORD;
+			cellsLeft = getCellCount();
+		}
+
+		public boolean nextCell(){
+			if (0 == cellsLeft)
+				return false;
+			cellPosition = NO_RECORD == cellPosition ? cellsPosition : skip(skip(skip(cellPosition)));
+			cellsLeft--;
+			return true;
+		}
+
+		public String getCellFamily(){
+			return fieldToString(cellPosition);
+		}
+
+		public String getCellQualifier(){
+			return fieldToString(skip(cellPosition));
+		}
+
+		/*
+		 * Position of the length prefix of the first matching value, or -1.
+		 */
+		private int findValue(byte[] family, byte[] qualifier){
+			int position = cellsPosition;
+			for(int cells = getCellCount(); cells > 0; cells--){
+				int qualifierPosition = skip(position);
+				int valuePosition = skip(qualifierPosition);
+				if (fieldEquals(position, family) && fieldEquals(qualifierPosition, qualifier))
+					return valuePosition;
+				position = skip(valuePosition);
+			}
+			return NO_RECORD;
+		}
+
+		private boolean fieldEquals(int fieldPosition, byte[] other){
+			return chunk.getInt(fieldPosition) == other.length && regionEquals(chunk, fieldPosition + INT_SIZE, other, 0, other.length);
+		}
+
+		private String fieldToString(int fieldPosition){
+			return regionToString(chunk, fieldPosition + INT_SIZE, chunk.getInt(fieldPosition));
+		}
+
+		private int skip(int fieldPosition){
+			return fieldPosition + INT_SIZE + chunk.getInt(fieldPosition);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Software License Agreement for MRUnit HBase Extension
+ * 
+ * Copyright (c) 2014 Renaissance Learning, Inc. and James Argeropoulos
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.renaissance.mrunit.hbase;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+
+/*
+ * Runs the adapted mapper, but hands every context.write() to collect() instead of to MRUnit.
+ * MRUnit never sees the output, so it builds no list of Puts; collect() decides what is kept.
+ */
+abstract class CapturingMapper<InputKey, InputValue, OutputKey> extends Mapper<InputKey, InputValue, OutputKey, Writable> {
+	private final Mapper<InputKey, InputValue, OutputKey, Writable> adapted;
+
+	CapturingMapper(Mapper<InputKey, InputValue, OutputKey, Writable> adapted){
+		this.adapted = adapted;
+	}
+
+	protected abstract void collect(OutputKey key, Writable value);
+
+	public void run(Context context) throws IOException, InterruptedException {
+		adapted.run(new CollectingContext(new WrappedMapper<InputKey, InputValue, OutputKey, Writable>(), context));
+	}
+
+	/*
+	 * Raw on purpose: javac cannot match write(OutputKey, Writable) against TaskInputOutputContext.write through the generic inner class.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private class CollectingContext extends WrappedMapper.Context{
+		CollectingContext(WrappedMapper wrapped, Context context){
+			wrapped.super(context);
+		}
+
+		public void write(Object key, Object value){
+			collect((OutputKey)key, (Writable)value);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Software License Agreement for MRUnit HBase Extension
+ * 
+ * Copyright (c) 2014 Renaissance Learning, Inc. and James Argeropoulos
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.renaissance.mrunit.hbase;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+
+/*
+ * The Put/KeyValue outputs of a task, indexed by the key the validators match rows on.
+ * ListedMutations keeps references to the emitted objects. CapturedMutations copies them into ByteBuffer chunks.
+ * The validators read both through a View, which is moved from record to record instead of being allocated for each one.
+ */
+public abstract class EmittedMutations {
+	static final int NO_RECORD = -1;
+	private int[] hashes = new int[16];
+	private int count;
+	private int[] buckets;
+	private int[] chain;
+
+	/*
+	 * Adds a Put or a KeyValue under the given key. The key is whatever the validator matches rows on, not necessarily the row inside the mutation.
+	 */
+	public abstract void append(byte[] key, Writable mutation);
+
+	/*
+	 * Adds a Put or a KeyValue under its own row, which is where MultiTableOutputFormat jobs carry the row key.
+	 */
+	public void append(Writable mutation){
+		append(getRow(mutation), mutation);
+	}
+
+	public abstract View view();
+
+	protected abstract boolean keyEquals(int ordinal, byte[] key);
+
+	public int size(){
+		return count;
+	}
+
+	/*
+	 * Drops everything appended so far.
+	 */
+	public void clear(){
+		count = 0;
+		buckets = null;
+		chain = null;
+	}
+
+	/*
+	 * Row index. first() and next() walk the records stored under a key in the order they were appended; both return -1 when there are no more.
+	 * 	for (int i = outputs.first(key); i != -1; i = outputs.next(i, key))
+	 */
+	public int first(byte[] key){
+		if (null == buckets)
+			buildIndex();
+		return matching(buckets[Bytes.hashCode(key) & (buckets.length - 1)], key);
+	}
+
+	public int next(int ordinal, byte[] key){
+		if (null == buckets)
+			buildIndex();
+		return matching(chain[ordinal], key);
+	}
+
+	/*
+	 * Subclasses call this once for every record they append, in append order.
+	 */
+	protected void indexKey(byte[] key){
+		if (count == hashes.length){
+			int[] grownHashes = new int[count * 2];
+			System.arraycopy(hashes, 0, grownHashes, 0, count);
+			hashes = grownHashes;
+		}
+		hashes[count++] = Bytes.hashCode(key);
+		buckets = null;
+	}
+
+	protected void checkOrdinal(int ordinal){
+		if (ordinal < 0 || ordinal >= count)
+			throw new IndexOutOfBoundsException("Index: " + ordinal + ", Size: " + count);
+	}
+
+	private int matching(int ordinal, byte[] key){
+		int keyHash = Bytes.hashCode(key);
+		while(NO_RECORD != ordinal && (hashes[ordinal] != keyHash || false == keyEquals(ordinal, key)))
+			ordinal = chain[ordinal];
+		return ordinal;
+	}
+
+	private void buildIndex(){
+		int capacity = 16;
+		while(capacity < count * 2)
+			capacity <<= 1;
+		buckets = new int[capacity];
+		Arrays.fill(buckets, NO_RECORD);
+		chain = new int[count];
+		//Walk backwards so that every bucket chain comes out in append order.
+		for(int i = count - 1; i >= 0; i--){
+			int bucket = hashes[i] & (capacity - 1);
+			chain[i] = buckets[bucket];
+			buckets[bucket] = i;
+		}
+	}
+
+	static byte[] getRow(Writable mutation){
+		if (mutation instanceof Put)
+			return ((Put)mutation).getRow();
+		if (mutation instanceof KeyValue)
+			return ((KeyValue)mutation).getRow();
+		throw unsupported(mutation);
+	}
+
+	static IllegalArgumentException unsupported(Writable mutation){
+		return new IllegalArgumentException("Only Put and KeyValue outputs can be validated; got " + (null == mutation ? "null" : mutation.getClass().getName()));
+	}
+
+	/*
+	 * Read access to one record. Only the String accessors allocate, and those are meant for building error messages.
+	 * The cell cursor walks the record's cells in order:
+	 * 	for(actual.rewindCells(); actual.nextCell(); )
+	 */
+	public interface View{
+		View moveTo(int ordinal);
+		boolean keyEquals(byte[] key);
+		/*
+		 * True when this record's key is the tail end of the given key.
+		 */
+		boolean keyIsSuffixOf(byte[] key);
+		String getKey();
+		boolean has(byte[] family, byte[] qualifier);
+		boolean valueEquals(byte[] family, byte[] qualifier, byte[] expected);
+		/*
+		 * The value of the first cell for family:qualifier, or null if there is none.
+		 */
+		String getValue(byte[] family, byte[] qualifier);
+		void rewindCells();
+		boolean nextCell();
+		String getCellFamily();
+		String getCellQualifier();
+	}
+}
@@ -23,6 +23,7 @@
  */
 package com.renaissance.mrunit.hbase;
 
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.Writable;
 
 import com.renaissance.mrunit.hbase.HBaseExpectedColumn;
@@ -48,10 +49,12 @@ public class HBaseExpectedColumn{
 		private byte[] columnFamily;
 		private byte[] qualifier;
 		private String expected;
+		private byte[] expectedBytes;
 		public ExpectedValue(byte[] cf, byte[] q, Writable val){
 			columnFamily = cf;
 			qualifier = q;
 			expected = val.toString();
+			expectedBytes = Bytes.toBytes(expected);
 		}
 		public byte[] getColumnFamily(){
 			return columnFamily;
@@ -61,6 +64,9 @@ public class HBaseExpectedColumn{
 		}
 		public String getExpected(){
 			return expected;
+		}
+		public byte[] getExpectedBytes(){
+			return expectedBytes;
 		}		
 	}
 }
\ No newline at end of file
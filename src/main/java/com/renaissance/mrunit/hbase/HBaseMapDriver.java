@@ -27,15 +27,17 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.hadoop.hbase.KeyValue;
-import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mrunit.internal.util.Errors;
 import org.apache.hadoop.mrunit.mapreduce.MapDriver;
 import org.apache.hadoop.mrunit.types.Pair;
@@ -46,11 +48,20 @@ import com.renaissance.mrunit.hbase.HBaseExpectedColumn.ExpectedValue;
  * This class wraps the standard MRUnit.MapDriver object. It provides it's own validate method so that we can have meaningful comparisons of actual vs expected.
  * Instantiate the MapDriver as you normally would. Then instantiate an HBaseMapDriver with the built in instance. Use the wrapper class for all of the remainder of your test activities.
  * When the test is run, the wrapper's enhanced validate method will use the expected data to verify the work.
+ * 
+ * For mappers writing through MultiTableOutputFormat the OutputKey is the table name and the row key lives in the Put. Describe those outputs with withTableOutput() instead of withOutput().
+ * 	.withTableOutput("poems", "Basho", gradeColumn.Value(new Text("9")))
+ * Deletes written to a table are matched by row only, through withTableDelete().
+ * 	.withTableDelete("drafts", "Basho")
  */
 public class HBaseMapDriver<InputKey, InputValue, OutputKey> {
 	public static final Log LOG = LogFactory.getLog(HBaseMapDriver.class);
 	MapDriver<InputKey, InputValue, OutputKey, Writable> driver;
 	List<Pair<OutputKey, List<ExpectedValue>>> expectedOutputs = new ArrayList<Pair<OutputKey, List<ExpectedValue>>>();
+	Map<String, List<Pair<String, List<ExpectedValue>>>> expectedTables = new LinkedHashMap<String, List<Pair<String, List<ExpectedValue>>>>();
+	Map<String, List<String>> expectedDeletes = new LinkedHashMap<String, List<String>>();
+	boolean multiTableOutput = false;
+	boolean offHeapCapture = false;
 	
 	public HBaseMapDriver(MapDriver<InputKey, InputValue, OutputKey, Writable> adapted){
 		driver = adapted;
@@ -69,135 +80,300 @@ public class HBaseMapDriver<InputKey, InputValue, OutputKey> {
 	}
 	
 	public HBaseMapDriver<InputKey, InputValue, OutputKey> withOutput(OutputKey key, ExpectedValue... values){
+		if (multiTableOutput)
+			throw mixedExpectations();
 		expectedOutputs.add(new Pair<OutputKey, List<ExpectedValue>>(key, Arrays.asList(values)));
 		return this;
 	}
 	
+	/*
+	 * Treat the OutputKey as a table name and take the row key from the Put, as MultiTableOutputFormat does.
+	 * Only needed on its own when the mapper is expected to write nothing; withTableOutput() turns it on as well.
+	 */
+	public HBaseMapDriver<InputKey, InputValue, OutputKey> withMultiTableOutput(){
+		if (false == expectedOutputs.isEmpty())
+			throw mixedExpectations();
+		multiTableOutput = true;
+		return this;
+	}
+	
+	public HBaseMapDriver<InputKey, InputValue, OutputKey> withTableOutput(String table, String rowKey, ExpectedValue... values){
+		withMultiTableOutput();
+		List<Pair<String, List<ExpectedValue>>> expectedRows = expectedTables.get(table);
+		if (null == expectedRows){
+			expectedRows = new ArrayList<Pair<String, List<ExpectedValue>>>();
+			expectedTables.put(table, expectedRows);
+		}
+		expectedRows.add(new Pair<String, List<ExpectedValue>>(rowKey, Arrays.asList(values)));
+		return this;
+	}
+	
+	public HBaseMapDriver<InputKey, InputValue, OutputKey> withTableDelete(String table, String rowKey){
+		withMultiTableOutput();
+		getRows(expectedDeletes, table).add(rowKey);
+		return this;
+	}
+	
+	private IllegalStateException mixedExpectations(){
+		return new IllegalStateException("withOutput() cannot be mixed with withTableOutput(); give each expected row a table.");
+	}
+	
+	/*
+	 * Serialize each Put/KeyValue into direct ByteBuffers (see CapturedMutations) as the mapper writes it, instead of letting MRUnit collect the objects in a list.
+	 * Only runTest() captures this way; validate() is handed a list that already exists and copies it.
+	 */
+	public HBaseMapDriver<InputKey, InputValue, OutputKey> withOffHeapCapture(){
+		offHeapCapture = true;
+		return this;
+	}
+	
 	public List<Pair<OutputKey, Writable>> run() throws IOException{
 		return driver.run();
 	}
 
 	public void runTest() throws IOException{
-		validate(expectedOutputs, driver.run());
+		if (offHeapCapture)
+			runCapturing();
+		else
+			validate(driver.run());
 	}
 	
 	public void validate(final List<Pair<OutputKey, Writable>> outputs){
-		validate(expectedOutputs, outputs);
+		EmittedMutations rows = newCapture();
+		Map<String, EmittedMutations> tables = new LinkedHashMap<String, EmittedMutations>();
+		Map<String, List<String>> deletes = new LinkedHashMap<String, List<String>>();
+		for(Pair<OutputKey, Writable> actual : outputs)
+			collect(rows, tables, deletes, actual.getFirst(), actual.getSecond());
+		validateCaptured(rows, tables, deletes);
+	}
+	
+	/*
+	 * Swaps a CapturingMapper in for the length of the run, so the output goes straight into the arena.
+	 */
+	private void runCapturing() throws IOException{
+		final EmittedMutations rows = newCapture();
+		final Map<String, EmittedMutations> tables = new LinkedHashMap<String, EmittedMutations>();
+		final Map<String, List<String>> deletes = new LinkedHashMap<String, List<String>>();
+		final Mapper<InputKey, InputValue, OutputKey, Writable> adapted = driver.getMapper();
+		driver.setMapper(new CapturingMapper<InputKey, InputValue, OutputKey>(adapted){
+			protected void collect(OutputKey key, Writable value){
+				HBaseMapDriver.this.collect(rows, tables, deletes, key, value);
+			}
+		});
+		try{
+			driver.run();
+		}
+		finally{
+			driver.setMapper(adapted);
+		}
+		validateCaptured(rows, tables, deletes);
+	}
+	
+	private EmittedMutations newCapture(){
+		if (offHeapCapture)
+			return new CapturedMutations();
+		return new ListedMutations();
+	}
+	
+	/*
+	 * Single table output is keyed by the OutputKey. In multi-table mode the OutputKey picks the table's partition and the mutation is indexed there by its own row.
+	 * Deletes carry no columns worth checking, so only their row is kept.
+	 */
+	private void collect(EmittedMutations rows, Map<String, EmittedMutations> tables, Map<String, List<String>> deletes, OutputKey key, Writable value){
+		if (false == multiTableOutput){
+			rows.append(Bytes.toBytes(getKeyAsString(key)), value);
+			return;
+		}
+		String table = getKeyAsString(key);
+		if (value instanceof Delete){
+			getRows(deletes, table).add(Bytes.toString(((Delete)value).getRow()));
+			return;
+		}
+		EmittedMutations captured = tables.get(table);
+		if (null == captured){
+			captured = newCapture();
+			tables.put(table, captured);
+		}
+		captured.append(value);
+	}
+	
+	private void validateCaptured(EmittedMutations rows, Map<String, EmittedMutations> tables, Map<String, List<String>> deletes){
+		if (false == multiTableOutput)
+			validate(getExpectedRows(expectedOutputs), rows);
+		else
+			validateTables(expectedTables, tables, expectedDeletes, deletes);
+	}
+	
+	private static List<String> getRows(Map<String, List<String>> tables, String table){
+		List<String> rows = tables.get(table);
+		if (null == rows){
+			rows = new ArrayList<String>();
+			tables.put(table, rows);
+		}
+		return rows;
+	}
+	
+	private void validate(final List<Pair<String, List<ExpectedValue>>> expectedRows, final EmittedMutations outputs){
+		try{
+			final Errors errors = new Errors(LOG);
+			compareRecordCounts(errors, expectedRows, outputs);
+			validateRows(errors, "", expectedRows, outputs);
+			errors.assertNone();
+		}
+		finally{
+			outputs.clear();
+		}
+	}
+	
+	private void validateTables(
+			final Map<String, List<Pair<String, List<ExpectedValue>>>> expectedTables,
+			final Map<String, EmittedMutations> outputTables,
+			final Map<String, List<String>> expectedDeletes,
+			final Map<String, List<String>> deletes){
+		try{
+			final Errors errors = new Errors(LOG);
+			for(Map.Entry<String, List<Pair<String, List<ExpectedValue>>>> expected : expectedTables.entrySet()){
+				String table = expected.getKey();
+				EmittedMutations outputs = outputTables.get(table);
+				reportTableSize(table, expected.getValue().size(), null == outputs ? 0 : outputs.size());
+				if (null == outputs)
+					errors.record("Missing expected table (%s); expected %d row(s).", table, expected.getValue().size());
+				else
+					validateRows(errors, table + "/", expected.getValue(), outputs);
+			}
+			for(Map.Entry<String, EmittedMutations> actual : outputTables.entrySet())
+				if (false == expectedTables.containsKey(actual.getKey())){
+					reportTableSize(actual.getKey(), 0, actual.getValue().size());
+					errors.record("Recieved unexpected table (%s); got %d output(s).", actual.getKey(), actual.getValue().size());
+				}
+			checkDeletes(errors, expectedDeletes, deletes);
+			errors.assertNone();
+		}
+		finally{
+			for(EmittedMutations outputs : outputTables.values())
+				outputs.clear();
+		}
+	}
+	
+	/*
+	 * Each expected delete consumes one matching delete, so a row deleted twice has to be expected twice.
+	 */
+	private void checkDeletes(final Errors errors, final Map<String, List<String>> expectedDeletes, final Map<String, List<String>> deletes){
+		for(Map.Entry<String, List<String>> expected : expectedDeletes.entrySet()){
+			List<String> actualRows = deletes.get(expected.getKey());
+			for(String row : expected.getValue())
+				if (null == actualRows || false == actualRows.remove(row))
+					errors.record("Missing expected delete (%s/%s).", expected.getKey(), row);
+		}
+		for(Map.Entry<String, List<String>> actual : deletes.entrySet())
+			for(String row : actual.getValue())
+				errors.record("Recieved unexpected delete (%s/%s).", actual.getKey(), row);
 	}
 	
-	private void validate(final List<Pair<OutputKey, List<ExpectedValue>>> expectedOutputs, final List<Pair<OutputKey, Writable>> outputs){
-		final Errors errors = new Errors(LOG);
-		compareRecordCounts(errors, expectedOutputs, outputs);
-		checkForExpected(errors, expectedOutputs, outputs);
-		checkForUnexpected(errors, expectedOutputs, outputs);
-		errors.assertNone();
+	private void reportTableSize(String table, int expectedRows, int outputs){
+		LOG.info(String.format("%s: expected %d row(s), got %d output(s).", table, expectedRows, outputs));
+	}
+	
+	private void validateRows(
+			final Errors errors,
+			final String table,
+			final List<Pair<String, List<ExpectedValue>>> expectedRows,
+			final EmittedMutations outputs) {
+		byte[][] expectedKeys = getExpectedKeys(expectedRows);
+		EmittedMutations.View actualRow = outputs.view();
+		checkForExpected(errors, table, expectedRows, expectedKeys, outputs, actualRow);
+		checkForUnexpected(errors, table, expectedRows, expectedKeys, outputs, actualRow);
 	}
 	
 	private void checkForExpected(
 			final Errors errors,
-			final List<Pair<OutputKey, List<ExpectedValue>>> expectedOutputs,
-			final List<Pair<OutputKey, Writable>> outputs) {
-		if (0 == expectedOutputs.size())
-			return;
-		for (Pair<OutputKey, List<ExpectedValue>> expected : expectedOutputs){
-			String expectedKey = getExpectedKey(expected);
-			ArrayList<Pair<OutputKey, Writable>> matchingRows = getActualRowsWithMatchingRowKey(expectedKey, outputs);
-			if (0 == matchingRows.size())
-				errors.record("Missing expected rowkey (%s).", expectedKey);
+			final String table,
+			final List<Pair<String, List<ExpectedValue>>> expectedRows,
+			final byte[][] expectedKeys,
+			final EmittedMutations outputs,
+			final EmittedMutations.View actualRow) {
+		for (int row = 0; row < expectedRows.size(); row++){
+			Pair<String, List<ExpectedValue>> expected = expectedRows.get(row);
+			if (-1 == outputs.first(expectedKeys[row]))
+				errors.record("Missing expected rowkey (%s%s).", table, expected.getFirst());
 			else
-				checkForExpectedColumnsInActual(errors, expected, matchingRows);
+				checkForExpectedColumnsInActual(errors, table, expected, expectedKeys[row], outputs, actualRow);
 		}
 	}
 	
 	private void checkForExpectedColumnsInActual(
 			final Errors errors,
-			Pair<OutputKey, List<ExpectedValue>> expectedRow,
-			ArrayList<Pair<OutputKey, Writable>> matchingRows) {
+			final String table,
+			Pair<String, List<ExpectedValue>> expectedRow,
+			byte[] expectedKey,
+			EmittedMutations outputs,
+			EmittedMutations.View actualRow) {
 		for(ExpectedValue expected : expectedRow.getSecond()){
-			if (expectedNotInActual(errors, matchingRows, expected))
-				errors.record(	"Missing expected column (%s:%s).", 
+			if (expectedNotInActual(errors, table, expectedKey, outputs, actualRow, expected))
+				errors.record(	"Missing expected column (%s%s:%s).", 
+								getColumnLocation(table, expectedRow.getFirst()),
 								Bytes.toString(expected.getColumnFamily()),
 								Bytes.toString(expected.getQualifier()));
 		}
 	}
 
 	private boolean expectedNotInActual(final Errors errors,
-			ArrayList<Pair<OutputKey, Writable>> matchingRows,
+			final String table,
+			byte[] expectedKey,
+			EmittedMutations outputs,
+			EmittedMutations.View actualRow,
 			ExpectedValue expected) {
-		for(Pair<OutputKey,Writable> actualRow : matchingRows){
-			if (expectedColumnInActual(errors, expected, actualRow.getSecond()))
+		for(int i = outputs.first(expectedKey); -1 != i; i = outputs.next(i, expectedKey)){
+			if (expectedColumnInActual(errors, table, expected, actualRow.moveTo(i)))
 				return false;
 		}
 		return true;
 	}
 
 	private boolean expectedColumnInActual(final Errors errors,
-			ExpectedValue expected, Writable actual) {
-		if (actual instanceof Put)
-			return expectedColumnInActual(errors, expected, (Put)actual);
-		//TODO: Add a case for KeyValue.
-		return false;
-	}
-	
-	private boolean expectedColumnInActual(final Errors errors,
-			ExpectedValue expected, Put actual) {
+			final String table, ExpectedValue expected, EmittedMutations.View actual) {
 		if (actual.has(expected.getColumnFamily(), expected.getQualifier())) {
-			String actualValue = getActualValue(actual, expected);
-			if (false == expected.getExpected().equals(actualValue))
-				errors.record(	"Mismatch value for: Basho(t:new pond)\t\tExpected: %s\t\tRecieved: %s",
+			if (false == actual.valueEquals(expected.getColumnFamily(), expected.getQualifier(), expected.getExpectedBytes()))
+				errors.record(	"Mismatch value for: %s\t\tExpected: %s\t\tRecieved: %s",
+								getMismatchLocation(table, actual, expected),
 								expected.getExpected(),
-								actualValue);
+								actual.getValue(expected.getColumnFamily(), expected.getQualifier()));
 			return true;
 		}
 		return false;
 	}
 
-	private ArrayList<Pair<OutputKey, Writable>> getActualRowsWithMatchingRowKey(
-			String expectedKey, List<Pair<OutputKey, Writable>> outputs) {
-		ArrayList<Pair<OutputKey, Writable>> matchingRows = new ArrayList<Pair<OutputKey, Writable>>();
-		for(Pair<OutputKey, Writable> actual : outputs){
-			if (expectedKey.equals(getActualKey(actual)))
-				matchingRows.add(actual);
-		}
-		return matchingRows;
-	}
-
+	/*
+	 * Walks the row index from the expected side, marking every output whose row is expected and every one that has at least one expected column.
+	 * Outputs missing either mark are then reported in output order.
+	 */
 	private void checkForUnexpected(
 			final Errors errors,
-			final List<Pair<OutputKey, List<ExpectedValue>>> expectedOutputs,
-			final List<Pair<OutputKey, Writable>> outputs) {
+			final String table,
+			final List<Pair<String, List<ExpectedValue>>> expectedRows,
+			final byte[][] expectedKeys,
+			final EmittedMutations outputs,
+			final EmittedMutations.View actual) {
 		if (0 == outputs.size())
 			return;
-		for(Pair<OutputKey, Writable> actual : outputs){
-			String actualKey = getActualKey(actual);
-			ArrayList<Pair<OutputKey, List<ExpectedValue>>> matchingRows = getMatchingExpectedRows(actualKey, expectedOutputs);
-			if (0 == matchingRows.size())
-				errors.record("Recieved unexpected rowkey (%s).", actualKey);
-			else
-				checkForUnexpectedColumns(errors, actual, matchingRows);
+		boolean[] rowExpected = new boolean[outputs.size()];
+		boolean[] columnExpected = new boolean[outputs.size()];
+		for(int row = 0; row < expectedRows.size(); row++)
+			for(int i = outputs.first(expectedKeys[row]); -1 != i; i = outputs.next(i, expectedKeys[row])){
+				rowExpected[i] = true;
+				if (false == columnExpected[i])
+					columnExpected[i] = expectedColulmnsContainsActual(actual.moveTo(i), expectedRows.get(row));
+			}
+		for(int i = 0; i < outputs.size(); i++){
+			if (false == rowExpected[i])
+				errors.record("Recieved unexpected rowkey (%s%s).", table, actual.moveTo(i).getKey());
+			else if (false == columnExpected[i])
+				recordUnexpectedColumns(errors, table, actual.moveTo(i));
 		}
 	}
-	
-	private void checkForUnexpectedColumns(Errors errors,
-			Pair<OutputKey, Writable> actual,
-			ArrayList<Pair<OutputKey, List<ExpectedValue>>> matchingRows) {
-		Put actualColumn = (Put)actual.getSecond();
-		if (false == expectedRowsContainsActual(matchingRows, actualColumn))
-			recordUnexpectedColumns(errors, actualColumn);
-	}
 
-	private boolean expectedRowsContainsActual(
-			ArrayList<Pair<OutputKey, List<ExpectedValue>>> matchingRows,
-			Put actualColumn) {
-		//.net trueForAll() with predicate...
-		for(Pair<OutputKey, List<ExpectedValue>> expectedRow : matchingRows)
-			if (expectedColulmnsContainsActual(actualColumn, expectedRow))
-				return true;
-		return false;
-	}
-
-	private boolean expectedColulmnsContainsActual(Put actualColumn,
-			Pair<OutputKey, List<ExpectedValue>> expectedRow) {
+	private boolean expectedColulmnsContainsActual(EmittedMutations.View actualColumn,
+			Pair<String, List<ExpectedValue>> expectedRow) {
 		//.net trueForAll() with a predicate...
 		for(ExpectedValue expectedColumn : expectedRow.getSecond())
 			if (actualColumn.has(expectedColumn.getColumnFamily(), expectedColumn.getQualifier()))
@@ -205,47 +381,52 @@ public class HBaseMapDriver<InputKey, InputValue, OutputKey> {
 		return false;
 	}
 
-	private void recordUnexpectedColumns(Errors errors, Put actualColumn) {
-		for(List<KeyValue> columnList : actualColumn.getFamilyMap().values())
-			for(KeyValue column : columnList)
-				errors.record(	"Recieved unexpected column (%s:%s).", 
-								Bytes.toString(column.getFamily()), 
-								Bytes.toString(column.getQualifier()));
-	}
-
-	private ArrayList<Pair<OutputKey, List<ExpectedValue>>> getMatchingExpectedRows(
-			String actualKey,
-			List<Pair<OutputKey, List<ExpectedValue>>> expectedRows) {
-		//Still a .Net boy at heart. This would be a List<T>.Find() and not a whole method... sigh
-		ArrayList<Pair<OutputKey, List<ExpectedValue>>> matchingRows = new ArrayList<Pair<OutputKey, List<ExpectedValue>>>();
-		for(Pair<OutputKey, List<ExpectedValue>> expected : expectedRows){
-			String expectedKey = getExpectedKey(expected);
-			if (actualKey.equals(expectedKey))
-				matchingRows.add(expected);
-		}
-		return matchingRows;
+	private void recordUnexpectedColumns(Errors errors, final String table, EmittedMutations.View actualColumn) {
+		String location = 0 == table.length() ? "" : getColumnLocation(table, actualColumn.getKey());
+		for(actualColumn.rewindCells(); actualColumn.nextCell(); )
+			errors.record(	"Recieved unexpected column (%s%s:%s).", 
+							location,
+							actualColumn.getCellFamily(), 
+							actualColumn.getCellQualifier());
 	}
 
 	private void compareRecordCounts(
 			final Errors errors,
-			final List<Pair<OutputKey, List<ExpectedValue>>> expectedOutputs,
-			final List<Pair<OutputKey, Writable>> outputs) {
-	    if (!outputs.isEmpty() && expectedOutputs.isEmpty()) 
+			final List<Pair<String, List<ExpectedValue>>> expectedRows,
+			final EmittedMutations outputs) {
+	    if (0 != outputs.size() && expectedRows.isEmpty()) 
 	    	errors.record("Expected no output(s); got %d output(s).", outputs.size());
 	}
 
-	private String getActualValue(Put writable, ExpectedValue expectedColumn) {
-		return Bytes.toString(writable.get(expectedColumn.getColumnFamily(), expectedColumn.getQualifier()).get(0).getValue());
+	private List<Pair<String, List<ExpectedValue>>> getExpectedRows(final List<Pair<OutputKey, List<ExpectedValue>>> expectedOutputs){
+		List<Pair<String, List<ExpectedValue>>> expectedRows = new ArrayList<Pair<String, List<ExpectedValue>>>();
+		for(Pair<OutputKey, List<ExpectedValue>> expected : expectedOutputs)
+			expectedRows.add(new Pair<String, List<ExpectedValue>>(getKeyAsString(expected.getFirst()), expected.getSecond()));
+		return expectedRows;
 	}
 
-	private String getActualKey(final Pair<OutputKey, Writable> actual) {
-		return getKeyAsString(actual.getFirst());
+	/*
+	 * Column errors only name the table and row in multi-table mode; single table messages read as they always have.
+	 */
+	private String getColumnLocation(String table, String rowKey){
+		if (0 == table.length())
+			return "";
+		return table + rowKey + "/";
 	}
 
-	private String getExpectedKey(Pair<OutputKey, List<ExpectedValue>> expected) {
-		return getKeyAsString(expected.getFirst());
+	private String getMismatchLocation(String table, EmittedMutations.View actual, ExpectedValue expected){
+		if (0 == table.length())
+			return "Basho(t:new pond)";
+		return String.format("%s%s:%s", getColumnLocation(table, actual.getKey()), Bytes.toString(expected.getColumnFamily()), Bytes.toString(expected.getQualifier()));
 	}
-	
+
+	private byte[][] getExpectedKeys(final List<Pair<String, List<ExpectedValue>>> expectedRows){
+		byte[][] expectedKeys = new byte[expectedRows.size()][];
+		for(int row = 0; row < expectedRows.size(); row++)
+			expectedKeys[row] = Bytes.toBytes(expectedRows.get(row).getFirst());
+		return expectedKeys;
+	}
+
 	private String getKeyAsString(OutputKey key){
 		String result = key.toString();
 		if (key instanceof ImmutableBytesWritable)
@@ -30,9 +30,9 @@ import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mrunit.internal.util.Errors;
 import org.apache.hadoop.mrunit.mapreduce.ReduceDriver;
 import org.apache.hadoop.mrunit.types.Pair;
@@ -48,6 +48,7 @@ public class HBaseReduceDriver<InputKey, InputValue, OutputKey> {
 	public static final Log LOG = LogFactory.getLog(HBaseReduceDriver.class);
 	ReduceDriver<InputKey, InputValue, OutputKey, Writable> driver;
 	List<Pair<OutputKey, List<ExpectedValue>>> expectedResults = new ArrayList<Pair<OutputKey, List<ExpectedValue>>>();
+	boolean offHeapCapture = false;
 	
 	public HBaseReduceDriver(ReduceDriver<InputKey, InputValue, OutputKey, Writable> adapted){
 		driver = adapted;
@@ -63,42 +64,82 @@ public class HBaseReduceDriver<InputKey, InputValue, OutputKey> {
 		return this;
 	}
 	
+	/*
+	 * Serialize each Put/KeyValue into direct ByteBuffers (see CapturedMutations) as the reducer writes it, instead of letting MRUnit collect the objects in a list.
+	 */
+	public HBaseReduceDriver<InputKey, InputValue, OutputKey> withOffHeapCapture(){
+		offHeapCapture = true;
+		return this;
+	}
+	
 	public List<Pair<OutputKey, Writable>> run() throws IOException{
 		return driver.run();
 	}
 
 	public void runTest() throws IOException{
-		validate(expectedResults, driver.run());
+		if (offHeapCapture)
+			validate(expectedResults, runCapturing());
+		else
+			validate(expectedResults, capture(driver.run()));
+	}
+	
+	/*
+	 * Swaps a CapturingReducer in for the length of the run, so the output goes straight into the arena.
+	 */
+	private EmittedMutations runCapturing() throws IOException{
+		final EmittedMutations captured = new CapturedMutations();
+		final Reducer<InputKey, InputValue, OutputKey, Writable> adapted = driver.getReducer();
+		driver.setReducer(new CapturingReducer<InputKey, InputValue, OutputKey>(adapted){
+			protected void collect(OutputKey key, Writable value){
+				captured.append(Bytes.toBytes(key.toString()), value);
+			}
+		});
+		try{
+			driver.run();
+		}
+		finally{
+			driver.setReducer(adapted);
+		}
+		return captured;
 	}
 	
-	private void validate(final List<Pair<OutputKey, List<ExpectedValue>>> expectedResults, final List<Pair<OutputKey, Writable>> actuals){
+	private EmittedMutations capture(final List<Pair<OutputKey, Writable>> outputs){
+		EmittedMutations captured = new ListedMutations();
+		for(Pair<OutputKey, Writable> actual : outputs)
+			captured.append(Bytes.toBytes(actual.getFirst().toString()), actual.getSecond());
+		return captured;
+	}
+	
+	private void validate(final List<Pair<OutputKey, List<ExpectedValue>>> expectedResults, final EmittedMutations actuals){
+		try{
+			validateInOrder(expectedResults, actuals);
+		}
+		finally{
+			actuals.clear();
+		}
+	}
+	
+	private void validateInOrder(final List<Pair<OutputKey, List<ExpectedValue>>> expectedResults, final EmittedMutations actuals){
 		final Errors errors = new Errors(LOG);
 		if(expectedResults.size() != actuals.size()) {
 			 errors.record("Mismatch in output size.  Expected %s got %s", expectedResults.size(), actuals.size());
 		}
+		EmittedMutations.View actual = actuals.view();
 		int i= 0;
 		for(Pair<OutputKey, List<ExpectedValue>> expected : expectedResults){
 			final String expectedKey = expected.getFirst().toString();
-			final Pair<OutputKey, Writable> actual = actuals.get(i++);
-			final String actualKey = actual.getFirst().toString();
-			if(!expectedKey.endsWith(actualKey)) 
+			actual.moveTo(i++);
+			if(!actual.keyIsSuffixOf(Bytes.toBytes(expectedKey))) 
 				errors.record("Reducer key does not match expected result.  "
-						+ "Expected '%s' got '%s'", expectedKey, actualKey);
+						+ "Expected '%s' got '%s'", expectedKey, actual.getKey());
 			
-			Put writable = (Put)actual.getSecond();
 			for(ExpectedValue expectedColumn : expected.getSecond()){
-				try
-				{
-				String actualValue = Bytes.toString(writable.get(expectedColumn.getColumnFamily(), expectedColumn.getQualifier()).get(0).getValue());
-				if (!expectedColumn.getExpected().equals(actualValue))
-					errors.record("Reducer value does not match expected result.  Expected '%s' got '%s'", expectedColumn.getExpected(), actualValue);
-				}
-				catch (IndexOutOfBoundsException e){
+				if (!actual.has(expectedColumn.getColumnFamily(), expectedColumn.getQualifier()))
 					errors.record("Could not find a column for %s:%s", new String(expectedColumn.getColumnFamily()), new String(expectedColumn.getQualifier()));
-				}
+				else if (!actual.valueEquals(expectedColumn.getColumnFamily(), expectedColumn.getQualifier(), expectedColumn.getExpectedBytes()))
+					errors.record("Reducer value does not match expected result.  Expected '%s' got '%s'", expectedColumn.getExpected(), actual.getValue(expectedColumn.getColumnFamily(), expectedColumn.getQualifier()));
 			}
 		}
 		errors.assertNone();
 	}
 }
-
@@ -0,0 +1,160 @@
+/*
+ * Software License Agreement for MRUnit HBase Extension
+ * 
+ * Copyright (c) 2014 Renaissance Learning, Inc. and James Argeropoulos
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.renaissance.mrunit.hbase;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+
+/*
+ * The drivers' default store for emitted mutations. It keeps a reference to each Put/KeyValue the task emitted, next to its key; nothing is copied.
+ */
+public class ListedMutations extends EmittedMutations {
+	private final List<byte[]> keys = new ArrayList<byte[]>();
+	private final List<Writable> mutations = new ArrayList<Writable>();
+
+	public void append(byte[] key, Writable mutation){
+		if (false == (mutation instanceof Put || mutation instanceof KeyValue))
+			throw unsupported(mutation);
+		keys.add(key);
+		mutations.add(mutation);
+		indexKey(key);
+	}
+
+	public void clear(){
+		super.clear();
+		keys.clear();
+		mutations.clear();
+	}
+
+	protected boolean keyEquals(int ordinal, byte[] key){
+		checkOrdinal(ordinal);
+		return Bytes.equals(keys.get(ordinal), key);
+	}
+
+	public Mutation view(){
+		return new Mutation();
+	}
+
+	public class Mutation implements View{
+		private byte[] key;
+		private Put put;
+		private KeyValue keyValue;
+		private Iterator<List<KeyValue>> families;
+		private Iterator<KeyValue> cells;
+		private KeyValue cell;
+
+		public Mutation moveTo(int ordinal){
+			checkOrdinal(ordinal);
+			key = keys.get(ordinal);
+			Writable mutation = mutations.get(ordinal);
+			put = mutation instanceof Put ? (Put)mutation : null;
+			keyValue = mutation instanceof KeyValue ? (KeyValue)mutation : null;
+			rewindCells();
+			return this;
+		}
+
+		public boolean keyEquals(byte[] other){
+			return Bytes.equals(key, other);
+		}
+
+		public boolean keyIsSuffixOf(byte[] other){
+			return key.length <= other.length
+				&& 0 == Bytes.compareTo(key, 0, key.length, other, other.length - key.length, key.length);
+		}
+
+		public String getKey(){
+			return Bytes.toString(key);
+		}
+
+		public boolean has(byte[] family, byte[] qualifier){
+			return null != findCell(family, qualifier);
+		}
+
+		public boolean valueEquals(byte[] family, byte[] qualifier, byte[] expected){
+			KeyValue found = findCell(family, qualifier);
+			return null != found
+				&& 0 == Bytes.compareTo(found.getBuffer(), found.getValueOffset(), found.getValueLength(), expected, 0, expected.length);
+		}
+
+		public String getValue(byte[] family, byte[] qualifier){
+			KeyValue found = findCell(family, qualifier);
+			if (null == found)
+				return null;
+			return Bytes.toString(found.getBuffer(), found.getValueOffset(), found.getValueLength());
+		}
+
+		/*
+		 * The iterators are only created once nextCell() is called, so moveTo() stays allocation-free.
+		 */
+		public void rewindCells(){
+			families = null;
+			cells = null;
+			cell = null;
+		}
+
+		public boolean nextCell(){
+			if (null != keyValue){
+				boolean first = null == cell;
+				cell = keyValue;
+				return first;
+			}
+			if (null == families)
+				families = put.getFamilyMap().values().iterator();
+			while(null == cells || false == cells.hasNext()){
+				if (false == families.hasNext())
+					return false;
+				cells = families.next().iterator();
+			}
+			cell = cells.next();
+			return true;
+		}
+
+		public String getCellFamily(){
+			return Bytes.toString(cell.getFamily());
+		}
+
+		public String getCellQualifier(){
+			return Bytes.toString(cell.getQualifier());
+		}
+
+		private KeyValue findCell(byte[] family, byte[] qualifier){
+			if (null != keyValue)
+				return keyValue.matchingColumn(family, qualifier) ? keyValue : null;
+			//Put.get(family, qualifier) would build a new list on every lookup.
+			List<KeyValue> columnList = put.getFamilyMap().get(family);
+			if (null == columnList)
+				return null;
+			for(int i = 0; i < columnList.size(); i++)
+				if (columnList.get(i).matchingQualifier(qualifier))
+					return columnList.get(i);
+			return null;
+		}
+	}
+}
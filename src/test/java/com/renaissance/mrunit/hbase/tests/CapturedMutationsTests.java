@@ -0,0 +1,128 @@
+/*
+ * Software License Agreement for MRUnit HBase Extension
+ * 
+ * Copyright (c) 2014 Renaissance Learning, Inc. and James Argeropoulos
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.renaissance.mrunit.hbase.tests;
+
+import static org.junit.Assert.*;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import com.renaissance.mrunit.hbase.CapturedMutations;
+
+public class CapturedMutationsTests {
+	private static final byte[] TITLE_COLUMNFAMILY = Bytes.toBytes("t");
+	private static final byte[] OLD_POND = Bytes.toBytes("old pond");
+	private static final byte[] NEW_POND = Bytes.toBytes("new pond");
+
+	private Put haiku(String author, byte[] title, String lines){
+		Put put = new Put(Bytes.toBytes(author));
+		put.add(TITLE_COLUMNFAMILY, title, Bytes.toBytes(lines));
+		return put;
+	}
+
+	@Test
+	public void put_readBackThroughView() {
+		CapturedMutations captured = new CapturedMutations();
+		captured.append(Bytes.toBytes("Basho"), haiku("Basho", OLD_POND, "a frog leaps in"));
+		CapturedMutations.Mutation actual = captured.view().moveTo(0);
+		assertEquals("Basho", actual.getKey());
+		assertEquals(1, actual.getCellCount());
+		assertTrue(actual.nextCell());
+		assertEquals("t", actual.getCellFamily());
+		assertEquals("old pond", actual.getCellQualifier());
+		assertFalse(actual.nextCell());
+		assertTrue(actual.has(TITLE_COLUMNFAMILY, OLD_POND));
+		assertFalse(actual.has(TITLE_COLUMNFAMILY, NEW_POND));
+		assertTrue(actual.valueEquals(TITLE_COLUMNFAMILY, OLD_POND, Bytes.toBytes("a frog leaps in")));
+		assertEquals("a frog leaps in", actual.getValue(TITLE_COLUMNFAMILY, OLD_POND));
+		assertNull(actual.getValue(TITLE_COLUMNFAMILY, NEW_POND));
+	}
+
+	@Test
+	public void keyValue_capturedAsSingleCell() {
+		CapturedMutations captured = new CapturedMutations();
+		captured.append(Bytes.toBytes("Basho"), new KeyValue(Bytes.toBytes("Basho"), TITLE_COLUMNFAMILY, OLD_POND, Bytes.toBytes("water's sound")));
+		CapturedMutations.Mutation actual = captured.view().moveTo(0);
+		assertEquals(1, actual.getCellCount());
+		assertEquals("water's sound", actual.getValue(TITLE_COLUMNFAMILY, OLD_POND));
+	}
+
+	@Test
+	public void rowIndex_walksMatchingRecordsInOrderAcrossChunks() {
+		CapturedMutations captured = new CapturedMutations(64);
+		captured.append(Bytes.toBytes("Basho"), haiku("Basho", OLD_POND, "old pond..."));
+		captured.append(Bytes.toBytes("Soseki"), haiku("Soseki", OLD_POND, "Over the wintry forest, winds howl in rage with no leaves to blow."));
+		captured.append(Bytes.toBytes("Basho"), haiku("Basho", NEW_POND, "new pond..."));
+		byte[] basho = Bytes.toBytes("Basho");
+		assertEquals(3, captured.size());
+		assertEquals(0, captured.first(basho));
+		assertEquals(2, captured.next(0, basho));
+		assertEquals(-1, captured.next(2, basho));
+		assertEquals(-1, captured.first(Bytes.toBytes("Issa")));
+		assertEquals("new pond...", captured.view().moveTo(2).getValue(TITLE_COLUMNFAMILY, NEW_POND));
+	}
+
+	@Test
+	public void cellCursor_walksEveryCellInOrder() {
+		CapturedMutations captured = new CapturedMutations();
+		Put put = haiku("Basho", OLD_POND, "old pond...");
+		put.add(TITLE_COLUMNFAMILY, NEW_POND, Bytes.toBytes("new pond..."));
+		captured.append(Bytes.toBytes("Basho"), put);
+		CapturedMutations.Mutation actual = captured.view().moveTo(0);
+		assertTrue(actual.nextCell());
+		assertEquals("old pond", actual.getCellQualifier());
+		assertTrue(actual.nextCell());
+		assertEquals("new pond", actual.getCellQualifier());
+		assertFalse(actual.nextCell());
+		actual.rewindCells();
+		assertTrue(actual.nextCell());
+		assertEquals("old pond", actual.getCellQualifier());
+	}
+
+	@Test
+	public void clear_dropsRecords() {
+		CapturedMutations captured = new CapturedMutations();
+		captured.append(Bytes.toBytes("Basho"), haiku("Basho", OLD_POND, "old pond..."));
+		captured.clear();
+		assertEquals(0, captured.size());
+		assertEquals(-1, captured.first(Bytes.toBytes("Basho")));
+	}
+
+	@Test
+	public void keyIsSuffixOf() {
+		CapturedMutations captured = new CapturedMutations();
+		captured.append(Bytes.toBytes("Basho"), haiku("Basho", OLD_POND, ""));
+		CapturedMutations.Mutation actual = captured.view().moveTo(0);
+		assertTrue(actual.keyIsSuffixOf(Bytes.toBytes("Matsuo Basho")));
+		assertFalse(actual.keyIsSuffixOf(Bytes.toBytes("Bash")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unsupportedOutput_rejected() {
+		new CapturedMutations().append(Bytes.toBytes("Basho"), new Text("old pond"));
+	}
+}
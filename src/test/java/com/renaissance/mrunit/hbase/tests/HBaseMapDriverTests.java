@@ -4,11 +4,13 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 
+import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mrunit.mapreduce.MapDriver;
 import org.junit.Before;
 //import org.apache.hadoop.mrunit.ExpectedSuppliedException;
@@ -140,6 +142,72 @@ public class HBaseMapDriverTests {
 		}
 		assertEquals("1 Error(s): (Mismatch value for: Basho(t:new pond)\t\tExpected: old pond...\na frog leaps out\nwater's sound\t\tRecieved: old pond...\na frog leaps in\nwater's sound)", message);
 	}
+
+	@Test
+	public void offHeapCapture_expectedValueDoesNotMatchActual() throws IOException {
+		String message = null;
+		try{
+			HBaseExpectedColumn oldPond = new HBaseExpectedColumn(TITLE_COLUMNFAMILY, "old pond");
+			driver.withOffHeapCapture()
+					.withInput(new LongWritable(0L), new Text("Basho\nold pond\nold pond...\na frog leaps in\nwater's sound"))
+					.withInput(new LongWritable(0L), new Text("Soseki\nOver the wintery\nOver the wintry\nforest, winds howl in rage\nwith no leaves to blow."))
+					.withOutput(new ImmutableBytesWritable(Bytes.toBytes("Basho")), oldPond.Value(new Text("old pond...\na frog leaps out\nwater's sound")))
+					.runTest();
+		}
+		catch(AssertionError e){
+			message = e.getMessage();
+		}
+		assertEquals("2 Error(s): (Mismatch value for: Basho(t:new pond)\t\tExpected: old pond...\na frog leaps out\nwater's sound\t\tRecieved: old pond...\na frog leaps in\nwater's sound, Recieved unexpected rowkey (Soseki).)", message);
+	}
+
+	@Test
+	public void offHeapCapture_restoresMapperAfterRun() throws IOException {
+		HBaseExpectedColumn oldPond = new HBaseExpectedColumn(TITLE_COLUMNFAMILY, "old pond");
+		driver.withOffHeapCapture()
+				.withInput(new LongWritable(0L), new Text("Basho\nold pond\nold pond...\na frog leaps in\nwater's sound"))
+				.withOutput(new ImmutableBytesWritable(Bytes.toBytes("Basho")), oldPond.Value(new Text("old pond...\na frog leaps in\nwater's sound")))
+				.runTest();
+		assertSame(sut, mapDriver.getMapper());
+	}
+
+	@Test
+	public void keyValueOutput_matchesExpected() throws IOException {
+		HBaseExpectedColumn oldPond = new HBaseExpectedColumn(TITLE_COLUMNFAMILY, "old pond");
+		new HBaseMapDriver(MapDriver.newMapDriver(new HaikuKeyValueMapper()))
+				.withInput(new LongWritable(0L), new Text("Basho\nold pond\nold pond...\na frog leaps in\nwater's sound"))
+				.withOutput(new ImmutableBytesWritable(Bytes.toBytes("Basho")), oldPond.Value(new Text("old pond...\na frog leaps in\nwater's sound")))
+				.runTest();
+	}
+
+	@Test
+	public void offHeapCapture_keyValueOutput_unexpectedColumn() throws IOException {
+		String message = null;
+		try{
+			new HBaseMapDriver(MapDriver.newMapDriver(new HaikuKeyValueMapper()))
+					.withOffHeapCapture()
+					.withInput(new LongWritable(0L), new Text("Basho\nold pond\nold pond...\na frog leaps in\nwater's sound"))
+					.withOutput(new ImmutableBytesWritable(Bytes.toBytes("Basho")), new HBaseExpectedColumn.ExpectedValue[]{})
+					.runTest();
+		}
+		catch(AssertionError e){
+			message = e.getMessage();
+		}
+		assertEquals("1 Error(s): (Recieved unexpected column (t:old pond).)", message);
+	}
+
+	@Test
+	public void unsupportedOutput_rejected() throws IOException {
+		Mapper<LongWritable, Text, ImmutableBytesWritable, Delete> deleter = new Mapper<LongWritable, Text, ImmutableBytesWritable, Delete>(){
+			public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+				context.write(new ImmutableBytesWritable(Bytes.toBytes(value.toString())), new Delete(Bytes.toBytes(value.toString())));
+			}
+		};
+		thrown.expect(IllegalArgumentException.class);
+		thrown.expectMessage("org.apache.hadoop.hbase.client.Delete");
+		new HBaseMapDriver(MapDriver.newMapDriver(deleter))
+				.withInput(new LongWritable(0L), new Text("Basho"))
+				.runTest();
+	}
 	
 
 @Test
@@ -0,0 +1,128 @@
+/*
+ * Software License Agreement for MRUnit HBase Extension
+ * 
+ * Copyright (c) 2014 Renaissance Learning, Inc. and James Argeropoulos
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.renaissance.mrunit.hbase.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mrunit.mapreduce.ReduceDriver;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.renaissance.mrunit.hbase.HBaseExpectedColumn;
+import com.renaissance.mrunit.hbase.HBaseReduceDriver;
+
+public class HBaseReduceDriverTests {
+	private static final String TITLE_COLUMNFAMILY = "t";
+	private static final Text OLD_POND = new Text("old pond\nold pond...\na frog leaps in\nwater's sound");
+	private HBaseExpectedColumn oldPond = new HBaseExpectedColumn(TITLE_COLUMNFAMILY, "old pond");
+	private HaikuReducer sut;
+	private ReduceDriver<Text,Text,Text,Put> reduceDriver;
+	private HBaseReduceDriver<Text, Text, Text> driver;
+
+	@Before
+	public void setup(){
+		sut = new HaikuReducer();
+		reduceDriver = ReduceDriver.newReduceDriver(sut);
+		driver = new HBaseReduceDriver(reduceDriver);
+	}
+
+	@Test
+	public void oneAuthor_matchesExpected() throws IOException {
+		driver.withInput(new Text("Basho"), Arrays.asList(OLD_POND))
+				.withOutput(new Text("Basho"), oldPond.Value(new Text("old pond...\na frog leaps in\nwater's sound")))
+				.runTest();
+	}
+
+	@Test
+	public void expectedKeyMayEndWithActualKey() throws IOException {
+		driver.withInput(new Text("Basho"), Arrays.asList(OLD_POND))
+				.withOutput(new Text("Matsuo Basho"), oldPond.Value(new Text("old pond...\na frog leaps in\nwater's sound")))
+				.withOffHeapCapture()
+				.runTest();
+	}
+
+	@Test
+	public void keyMismatch() throws IOException {
+		String message = null;
+		try{
+			driver.withInput(new Text("Basho"), Arrays.asList(OLD_POND))
+					.withOutput(new Text("Issa"), oldPond.Value(new Text("old pond...\na frog leaps in\nwater's sound")))
+					.runTest();
+		}
+		catch(AssertionError e){
+			message = e.getMessage();
+		}
+		assertEquals("1 Error(s): (Reducer key does not match expected result.  Expected 'Issa' got 'Basho')", message);
+	}
+
+	@Test
+	public void missingColumn() throws IOException {
+		String message = null;
+		try{
+			HBaseExpectedColumn newPond = new HBaseExpectedColumn(TITLE_COLUMNFAMILY, "new pond");
+			driver.withInput(new Text("Basho"), Arrays.asList(OLD_POND))
+					.withOutput(new Text("Basho"), newPond.Value(new Text("")))
+					.runTest();
+		}
+		catch(AssertionError e){
+			message = e.getMessage();
+		}
+		assertEquals("1 Error(s): (Could not find a column for t:new pond)", message);
+	}
+
+	@Test
+	public void valueMismatch() throws IOException {
+		String message = null;
+		try{
+			driver.withInput(new Text("Basho"), Arrays.asList(OLD_POND))
+					.withOutput(new Text("Basho"), oldPond.Value(new Text("old pond...\na frog leaps out\nwater's sound")))
+					.runTest();
+		}
+		catch(AssertionError e){
+			message = e.getMessage();
+		}
+		assertEquals("1 Error(s): (Reducer value does not match expected result.  Expected 'old pond...\na frog leaps out\nwater's sound' got 'old pond...\na frog leaps in\nwater's sound')", message);
+	}
+
+	@Test
+	public void offHeapCapture_missingColumnAndValueMismatch() throws IOException {
+		String message = null;
+		try{
+			HBaseExpectedColumn newPond = new HBaseExpectedColumn(TITLE_COLUMNFAMILY, "new pond");
+			driver.withInput(new Text("Basho"), Arrays.asList(OLD_POND))
+					.withOutput(new Text("Basho"), oldPond.Value(new Text("old pond...\na frog leaps out\nwater's sound")), newPond.Value(new Text("")))
+					.withOffHeapCapture()
+					.runTest();
+		}
+		catch(AssertionError e){
+			message = e.getMessage();
+		}
+		assertEquals("2 Error(s): (Reducer value does not match expected result.  Expected 'old pond...\na frog leaps out\nwater's sound' got 'old pond...\na frog leaps in\nwater's sound', Could not find a column for t:new pond)", message);
+	}
+}
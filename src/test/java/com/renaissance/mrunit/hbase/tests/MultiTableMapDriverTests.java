@@ -0,0 +1,233 @@
+/*
+ * Software License Agreement for MRUnit HBase Extension
+ * 
+ * Copyright (c) 2014 Renaissance Learning, Inc. and James Argeropoulos
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.renaissance.mrunit.hbase.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mrunit.mapreduce.MapDriver;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.renaissance.mrunit.hbase.HBaseExpectedColumn;
+import com.renaissance.mrunit.hbase.HBaseMapDriver;
+
+public class MultiTableMapDriverTests {
+	private static final String BASHO = "Basho\nold pond\nold pond...\na frog leaps in\nwater's sound";
+	private static final String SOSEKI = "Soseki\nOver the wintery\nOver the wintry\nforest, winds howl in rage\nwith no leaves to blow.";
+	private HBaseExpectedColumn oldPond = new HBaseExpectedColumn("t", "old pond");
+	private HBaseExpectedColumn authorName = new HBaseExpectedColumn("a", "name");
+	private MultiTableHaikuMapper sut;
+	private MapDriver<LongWritable,Text,ImmutableBytesWritable,Put> mapDriver;
+	private HBaseMapDriver<LongWritable, Text, ImmutableBytesWritable> driver;
+
+	@Rule
+	public final ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setup(){
+		sut = new MultiTableHaikuMapper();
+		mapDriver = MapDriver.newMapDriver(sut);
+		driver = new HBaseMapDriver(mapDriver);
+	}
+
+	@Test
+	public void oneHaiku_writtenToBothTables() throws IOException {
+		driver.withInput(new LongWritable(0L), new Text(BASHO))
+				.withTableOutput("poems", "Basho", oldPond.Value(new Text("old pond...\na frog leaps in\nwater's sound")))
+				.withTableOutput("titles", "old pond", authorName.Value(new Text("Basho")))
+				.runTest();
+	}
+
+	@Test
+	public void missingTable_andMissingRow() throws IOException {
+		String message = null;
+		try{
+			driver.withInput(new LongWritable(0L), new Text(BASHO))
+					.withTableOutput("poems", "Basho", oldPond.Value(new Text("old pond...\na frog leaps in\nwater's sound")))
+					.withTableOutput("poems", "Issa", oldPond.Value(new Text("")))
+					.withTableOutput("titles", "old pond", authorName.Value(new Text("Basho")))
+					.withTableOutput("authors", "Basho", authorName.Value(new Text("Basho")))
+					.runTest();
+		}
+		catch(AssertionError e){
+			message = e.getMessage();
+		}
+		assertEquals("2 Error(s): (Missing expected rowkey (poems/Issa)., Missing expected table (authors); expected 1 row(s).)", message);
+	}
+
+	@Test
+	public void unexpectedTable_reportsItsOutputCount() throws IOException {
+		String message = null;
+		try{
+			driver.withInput(new LongWritable(0L), new Text(BASHO))
+					.withInput(new LongWritable(0L), new Text(SOSEKI))
+					.withTableOutput("poems", "Basho", oldPond.Value(new Text("old pond...\na frog leaps in\nwater's sound")))
+					.withTableOutput("poems", "Soseki", new HBaseExpectedColumn("t", "Over the wintery").Value(new Text("Over the wintry\nforest, winds howl in rage\nwith no leaves to blow.")))
+					.runTest();
+		}
+		catch(AssertionError e){
+			message = e.getMessage();
+		}
+		assertEquals("1 Error(s): (Recieved unexpected table (titles); got 2 output(s).)", message);
+	}
+
+	@Test
+	public void rowsAreMatchedWithinTheirOwnTable() throws IOException {
+		String message = null;
+		try{
+			driver.withInput(new LongWritable(0L), new Text(BASHO))
+					.withTableOutput("poems", "Basho", oldPond.Value(new Text("old pond...\na frog leaps in\nwater's sound")))
+					.withTableOutput("titles", "Basho", authorName.Value(new Text("Basho")))
+					.runTest();
+		}
+		catch(AssertionError e){
+			message = e.getMessage();
+		}
+		assertEquals("2 Error(s): (Missing expected rowkey (titles/Basho)., Recieved unexpected rowkey (titles/old pond).)", message);
+	}
+
+	@Test
+	public void noTablesExpected_unexpectedTables() throws IOException {
+		String message = null;
+		try{
+			driver.withInput(new LongWritable(0L), new Text(BASHO))
+					.withMultiTableOutput()
+					.runTest();
+		}
+		catch(AssertionError e){
+			message = e.getMessage();
+		}
+		assertEquals("2 Error(s): (Recieved unexpected table (poems); got 1 output(s)., Recieved unexpected table (titles); got 1 output(s).)", message);
+	}
+
+	@Test
+	public void valueMismatch_namesTableAndRow() throws IOException {
+		String message = null;
+		try{
+			driver.withInput(new LongWritable(0L), new Text(BASHO))
+					.withTableOutput("poems", "Basho", oldPond.Value(new Text("old pond...\na frog leaps in\nwater's sound")))
+					.withTableOutput("titles", "old pond", authorName.Value(new Text("Issa")))
+					.runTest();
+		}
+		catch(AssertionError e){
+			message = e.getMessage();
+		}
+		assertEquals("1 Error(s): (Mismatch value for: titles/old pond/a:name\t\tExpected: Issa\t\tRecieved: Basho)", message);
+	}
+
+	@Test
+	public void missingAndUnexpectedColumns_nameTableAndRow() throws IOException {
+		String message = null;
+		try{
+			HBaseExpectedColumn newPond = new HBaseExpectedColumn("t", "new pond");
+			driver.withInput(new LongWritable(0L), new Text(BASHO))
+					.withTableOutput("poems", "Basho", newPond.Value(new Text("")))
+					.withTableOutput("titles", "old pond", authorName.Value(new Text("Basho")))
+					.runTest();
+		}
+		catch(AssertionError e){
+			message = e.getMessage();
+		}
+		assertEquals("2 Error(s): (Missing expected column (poems/Basho/t:new pond)., Recieved unexpected column (poems/Basho/t:old pond).)", message);
+	}
+
+	@Test
+	public void keyValueOutput_indexedByItsOwnRow() throws IOException {
+		Mapper<LongWritable, Text, ImmutableBytesWritable, KeyValue> mapper = new Mapper<LongWritable, Text, ImmutableBytesWritable, KeyValue>(){
+			public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+				context.write(MultiTableHaikuMapper.TITLES_TABLE, new KeyValue(Bytes.toBytes("old pond"), Bytes.toBytes("a"), Bytes.toBytes("name"), Bytes.toBytes(value.toString())));
+			}
+		};
+		new HBaseMapDriver(MapDriver.newMapDriver(mapper))
+				.withOffHeapCapture()
+				.withInput(new LongWritable(0L), new Text("Basho"))
+				.withTableOutput("titles", "old pond", authorName.Value(new Text("Basho")))
+				.runTest();
+	}
+
+	@Test
+	public void deletes_matchedByTableAndRow() throws IOException {
+		new HBaseMapDriver(MapDriver.newMapDriver(new PublishingMapper()))
+				.withInput(new LongWritable(0L), new Text("Basho"))
+				.withTableOutput("poems", "Basho", authorName.Value(new Text("Basho")))
+				.withTableDelete("drafts", "Basho")
+				.runTest();
+	}
+
+	@Test
+	public void offHeapCapture_missingAndUnexpectedDeletes() throws IOException {
+		String message = null;
+		try{
+			new HBaseMapDriver(MapDriver.newMapDriver(new PublishingMapper()))
+					.withOffHeapCapture()
+					.withInput(new LongWritable(0L), new Text("Basho"))
+					.withTableOutput("poems", "Basho", authorName.Value(new Text("Basho")))
+					.withTableDelete("drafts", "Issa")
+					.runTest();
+		}
+		catch(AssertionError e){
+			message = e.getMessage();
+		}
+		assertEquals("2 Error(s): (Missing expected delete (drafts/Issa)., Recieved unexpected delete (drafts/Basho).)", message);
+	}
+
+	@Test
+	public void withOutputAfterWithTableOutput_rejected() {
+		thrown.expect(IllegalStateException.class);
+		driver.withTableOutput("poems", "Basho", oldPond.Value(new Text("")))
+				.withOutput(MultiTableHaikuMapper.POEMS_TABLE, oldPond.Value(new Text("")));
+	}
+
+	@Test
+	public void withTableOutputAfterWithOutput_rejected() {
+		thrown.expect(IllegalStateException.class);
+		driver.withOutput(MultiTableHaikuMapper.POEMS_TABLE, oldPond.Value(new Text("")))
+				.withTableOutput("poems", "Basho", oldPond.Value(new Text("")));
+	}
+
+	/*
+	 * Moves the author's row from "drafts" to "poems".
+	 */
+	private static class PublishingMapper extends Mapper<LongWritable, Text, ImmutableBytesWritable, Writable> {
+		public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+			Put poem = new Put(Bytes.toBytes(value.toString()));
+			poem.add(Bytes.toBytes("a"), Bytes.toBytes("name"), Bytes.toBytes(value.toString()));
+			context.write(MultiTableHaikuMapper.POEMS_TABLE, poem);
+			context.write(new ImmutableBytesWritable(Bytes.toBytes("drafts")), new Delete(Bytes.toBytes(value.toString())));
+		}
+	}
+}